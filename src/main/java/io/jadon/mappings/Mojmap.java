@@ -1,6 +1,8 @@
 package io.jadon.mappings;
 
 import com.google.common.collect.Lists;
+import io.jadon.mappings.daemon.MappingDaemon;
+import io.jadon.mappings.daemon.MappingService;
 import io.jadon.mappings.yarn.YarnMappings;
 import lombok.SneakyThrows;
 import org.cadixdev.bombe.type.FieldType;
@@ -20,6 +22,12 @@ public class Mojmap {
 
     @SneakyThrows
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("daemon")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : MappingDaemon.DEFAULT_PORT;
+            new MappingDaemon(new MappingService(), port).start();
+            return;
+        }
+
         File dir = new File("versions/");
 //        VersionManager.downloadVersionFiles("1.15.2", dir);
 //        VersionManager.downloadVersionFiles("20w22a", dir);
@@ -32,6 +40,7 @@ public class Mojmap {
 //        VersionManager.diffVersions(dir, "1.16.1", "1.16.2-rc1");
 //        VersionManager.diffVersions(dir, "1.16.2-rc1", "1.16.2-rc2");
 //        VersionManager.diffVersions(dir, "1.15.2", "1.16.2-pre1");
+//        VersionManager.diffVersionChain(dir, Lists.newArrayList("1.16.1", "1.16.2-rc1", "1.16.2-rc2"), true, true);
 //        generateLunarMappings(GameVersion.v1_16);
 //        VersionManager.diffVersions(dir, "21w08b", "21w10a");
         VersionManager.diffVersions(dir, "1.17.1", "21w37a");
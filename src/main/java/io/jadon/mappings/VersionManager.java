@@ -1,13 +1,14 @@
 package io.jadon.mappings;
 
-import com.github.difflib.DiffUtils;
 import com.github.difflib.UnifiedDiffUtils;
+import com.github.difflib.patch.AbstractDelta;
 import com.github.difflib.patch.Patch;
 import com.google.common.io.Resources;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import io.jadon.mappings.diff.DiffStrategy;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.SneakyThrows;
@@ -31,9 +32,9 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.stream.Stream;
 
 /**
  * Generates mappings and creates diffs between versions
@@ -45,68 +46,155 @@ public class VersionManager {
     private static final List<String> PACKAGE_FILTERS = Arrays.asList("/net/minecraft", "/com/mojang");
 
     public static void diffVersions(File dir, String versionA, String versionB) {
-        File versionADir = new File(dir, versionA);
-        File versionBDir = new File(dir, versionB);
+        diffVersions(dir, versionA, versionB, false);
+    }
 
-        if (!versionADir.exists()) {
-            downloadVersionFiles(versionA, dir);
+    /**
+     * Create client & server patches between two versions.
+     *
+     * @param dir      directory containing the versions
+     * @param versionA before version
+     * @param versionB after version
+     * @param stream   write each file's patch as soon as it's generated instead of holding every patch in memory
+     */
+    public static void diffVersions(File dir, String versionA, String versionB, boolean stream) {
+        diffVersionChain(dir, Arrays.asList(versionA, versionB), stream, false);
+    }
+
+    /**
+     * Create client & server patches between each consecutive pair in a series of versions.
+     * Sides are diffed one after the other and each version's sources for a side are read once,
+     * so only the current pair of one side is kept in memory.
+     *
+     * @param dir        directory containing the versions
+     * @param versions   versions in order, e.g. 1.16.1, 1.16.2-rc1, 1.16.2-rc2
+     * @param stream     write each file's patch as soon as it's generated instead of holding every patch in memory
+     * @param cumulative also create patches from the first version to the last
+     */
+    public static void diffVersionChain(File dir, List<String> versions, boolean stream, boolean cumulative) {
+        if (versions.size() < 2) {
+            throw new IllegalArgumentException("Need at least two versions to diff, got " + versions);
         }
-        if (!versionBDir.exists()) {
-            downloadVersionFiles(versionB, dir);
+        for (String version : versions) {
+            if (!new File(dir, version).exists()) {
+                downloadVersionFiles(version, dir);
+            }
         }
 
-        PatchCollection clientPatchCollection = PatchCollection.empty();
-        PatchCollection serverPatchCollection = PatchCollection.empty();
+        String firstVersion = versions.get(0);
+        String lastVersion = versions.get(versions.size() - 1);
+        boolean writeCumulative = cumulative && versions.size() > 2;
+        for (Side side : Side.values()) {
+            String previousVersion = firstVersion;
+            SourceTree previousSources = readVersionSources(dir, firstVersion, side);
+            // only hold on to the first tree when the cumulative patch needs it
+            SourceTree firstSources = writeCumulative ? previousSources : null;
+            for (String version : versions.subList(1, versions.size())) {
+                SourceTree sources = readVersionSources(dir, version, side);
+                writeVersionPatches(new File(dir, previousVersion + "_to_" + version), side, previousSources, sources, stream);
+                previousVersion = version;
+                previousSources = sources;
+            }
+
+            // the first & last trees are still in memory, so the intermediate versions don't need to be read again
+            if (writeCumulative) {
+                writeVersionPatches(new File(dir, firstVersion + "_to_" + lastVersion), side, firstSources, previousSources, stream);
+            }
+        }
+    }
 
+    /**
+     * Read the decompiled sources of one side of a version.
+     *
+     * @param dir     directory containing the versions
+     * @param version version to read
+     * @param side    client or server
+     * @return sources of the side
+     */
+    public static SourceTree readVersionSources(File dir, String version, Side side) {
+        System.out.println("Reading " + version + " " + side + " sources");
+        File versionDir = new File(dir, version);
+        SourceTree sourceTree = SourceTree.empty();
         for (String packageFilter : PACKAGE_FILTERS) {
-            File versionAClientDir = new File(versionADir, "/decomp/client/" + packageFilter);
-            File versionAServerDir = new File(versionADir, "/decomp/server/" + packageFilter);
-            File versionBClientDir = new File(versionBDir, "/decomp/client/" + packageFilter);
-            File versionBServerDir = new File(versionBDir, "/decomp/server/" + packageFilter);
-
-            // create the patches
-            System.out.println("Creating client patches for " + packageFilter);
-            clientPatchCollection.merge(createPatches(versionAClientDir, versionBClientDir));
-            System.out.println("Creating server patches for " + packageFilter);
-            serverPatchCollection.merge(createPatches(versionAServerDir, versionBServerDir));
-        }
-
-        // mkdirs
-        File patchDir = new File(dir, versionA + "_to_" + versionB);
-        File clientPatchDir = new File(patchDir, "client");
-        File serverPatchDir = new File(patchDir, "server");
-
-        System.out.println("Writing client patches to " + clientPatchDir.getPath());
-        clientPatchCollection.writeToDir(clientPatchDir);
-        System.out.println("Writing server patches to " + serverPatchDir.getPath());
-        serverPatchCollection.writeToDir(serverPatchDir);
+            sourceTree.addAll(readSourceFiles(new File(versionDir, "/decomp/" + side + "/" + packageFilter)));
+        }
+        return sourceTree;
+    }
+
+    /**
+     * Write the patches of one side into {@code patchDir/side}. They're written to a temporary directory first and
+     * renamed into place once complete, so an existing side directory always holds a finished patch set.
+     * A previous side directory is renamed away before and deleted after, so it's briefly missing in between.
+     */
+    @SneakyThrows
+    private static void writeVersionPatches(File patchDir, Side side, SourceTree sourcesA, SourceTree sourcesB, boolean stream) {
+        File sidePatchDir = new File(patchDir, side.toString());
+        File tempPatchDir = new File(patchDir, side + ".tmp");
+        File oldPatchDir = new File(patchDir, side + ".old");
+        deleteDirectory(tempPatchDir.toPath());
+        deleteDirectory(oldPatchDir.toPath());
+
+        // streamed patches are written straight to the temporary dir
+        System.out.println("Creating " + side + " patches for " + patchDir.getName());
+        PatchCollection patchCollection = createPatches(sourcesA, sourcesB, stream ? tempPatchDir : null);
+        System.out.println("Writing " + side + " patches to " + sidePatchDir.getPath());
+        patchCollection.writeToDir(tempPatchDir);
+
+        if (sidePatchDir.exists()) {
+            Files.move(sidePatchDir.toPath(), oldPatchDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(tempPatchDir.toPath(), sidePatchDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        deleteDirectory(oldPatchDir.toPath());
     }
 
     public static PatchCollection createPatches(File dirA, File dirB) {
+        return createPatches(dirA, dirB, null);
+    }
+
+    /**
+     * Create patches between two directories of source files.
+     *
+     * @param dirA      before directory
+     * @param dirB      after directory
+     * @param outputDir if not null, each patch is written here as it's generated and
+     *                  the returned collection only contains the report
+     * @return the patches between the directories
+     */
+    public static PatchCollection createPatches(File dirA, File dirB, File outputDir) {
         System.out.println("comparing " + dirA.getPath() + " & " + dirB.getPath());
-        HashSet<String> fileNames = new HashSet<>();
-        List<FileContents> filesA = readSourceFiles(dirA);
-        List<FileContents> filesB = readSourceFiles(dirB);
+        SourceTree sourcesA = SourceTree.empty();
+        SourceTree sourcesB = SourceTree.empty();
+        sourcesA.addAll(readSourceFiles(dirA));
+        sourcesB.addAll(readSourceFiles(dirB));
+        return createPatches(sourcesA, sourcesB, outputDir);
+    }
 
+    /**
+     * Create patches between two sets of source files.
+     *
+     * @param sourcesA  before sources
+     * @param sourcesB  after sources
+     * @param outputDir if not null, each patch is written here as it's generated and
+     *                  the returned collection only contains the report
+     * @return the patches between the sources
+     */
+    public static PatchCollection createPatches(SourceTree sourcesA, SourceTree sourcesB, File outputDir) {
         // add all the file names to the set
-        for (FileContents fileContents : filesA) {
-            fileNames.add(fileContents.name);
-        }
-        for (FileContents fileContents : filesB) {
-            fileNames.add(fileContents.name);
-        }
+        HashSet<String> fileNames = new HashSet<>();
+        fileNames.addAll(sourcesA.files.keySet());
+        fileNames.addAll(sourcesB.files.keySet());
 
         List<String> fileChanges = new ArrayList<>();
         List<PatchedFile> patchedFiles = new ArrayList<>();
         for (String fileName : fileNames) {
             // get the correct file contents for each version
             // can be null if a file was added or removed
-            FileContents fileContentsA = filesA.stream().filter((s) -> s.name.equals(fileName)).findFirst().orElse(null);
-            FileContents fileContentsB = filesB.stream().filter((s) -> s.name.equals(fileName)).findFirst().orElse(null);
-            List<String> diff = FileContents.diff(fileContentsA, fileContentsB);
+            FileContents fileContentsA = sourcesA.files.get(fileName);
+            FileContents fileContentsB = sourcesB.files.get(fileName);
+            Patch<String> patch = FileContents.patch(fileContentsA, fileContentsB);
 
             // skip empty diffs
-            if (diff.isEmpty()) {
+            if (patch.getDeltas().isEmpty()) {
                 continue;
             }
 
@@ -118,7 +206,11 @@ public class VersionManager {
             }
             fileChanges.add(mark + " " + fileName);
 
-            patchedFiles.add(new PatchedFile(fileName, diff));
+            if (outputDir == null) {
+                patchedFiles.add(new PatchedFile(fileName, FileContents.diff(fileContentsA, fileContentsB, patch)));
+            } else {
+                FileContents.writeDiff(fileContentsA, fileContentsB, patch, PatchedFile.getPatchFile(outputDir, fileName));
+            }
         }
         Collections.sort(fileChanges);
         StringBuilder report = new StringBuilder();
@@ -128,6 +220,24 @@ public class VersionManager {
         return new PatchCollection(report.toString(), patchedFiles);
     }
 
+    /**
+     * Source files indexed by name.
+     */
+    @Data
+    public static class SourceTree {
+        private final Map<String, FileContents> files;
+
+        public static SourceTree empty() {
+            return new SourceTree(new HashMap<>());
+        }
+
+        public void addAll(List<FileContents> fileContents) {
+            for (FileContents contents : fileContents) {
+                files.put(contents.name, contents);
+            }
+        }
+    }
+
     @SneakyThrows
     public static List<FileContents> readSourceFiles(File dir) {
         List<FileContents> files = new ArrayList<>();
@@ -178,9 +288,7 @@ public class VersionManager {
             Files.write(new File(dir, "report.txt").toPath(), report.getBytes());
 
             for (PatchedFile patchedFile : patchedFiles) {
-                File patchFile = new File(dir, patchedFile.name + ".patch");
-                patchFile.getParentFile().mkdirs();
-                Files.write(patchFile.toPath(), patchedFile.diff);
+                Files.write(PatchedFile.getPatchFile(dir, patchedFile.name).toPath(), patchedFile.diff);
             }
         }
 
@@ -206,6 +314,19 @@ public class VersionManager {
     public static class PatchedFile {
         private final String name;
         private final List<String> diff;
+
+        /**
+         * Get the file a patch is written to, creating its parent directories.
+         *
+         * @param dir  patch directory
+         * @param name name of the patched file
+         * @return the patch file
+         */
+        public static File getPatchFile(File dir, String name) {
+            File patchFile = new File(dir, name + ".patch");
+            patchFile.getParentFile().mkdirs();
+            return patchFile;
+        }
     }
 
     @Data
@@ -213,28 +334,111 @@ public class VersionManager {
         private final String name;
         private final List<String> contents;
 
+        private static final int CONTEXT_SIZE = 5;
+
         /**
-         * Generate a diff between two FileContents.
+         * Create a patch between two FileContents, picking the diff algorithm from the size of the change.
          *
          * @param a before version, can be null
          * @param b after version, can be null
-         * @return lines of the diff between versions
+         * @return patch between versions
          */
-        @SneakyThrows
-        public static List<String> diff(FileContents a, FileContents b) {
-            Patch<String> patch;
-            // create the patch
+        public static Patch<String> patch(FileContents a, FileContents b) {
+            return patch(a, b, DiffStrategy.AUTO);
+        }
+
+        /**
+         * Create a patch between two FileContents.
+         *
+         * @param a        before version, can be null
+         * @param b        after version, can be null
+         * @param strategy diff algorithm to use
+         * @return patch between versions
+         */
+        public static Patch<String> patch(FileContents a, FileContents b, DiffStrategy strategy) {
             if (a == null) {
-                patch = DiffUtils.diff(new ArrayList<>(), b.contents);
+                return strategy.diff(new ArrayList<>(), b.contents);
             } else if (b == null) {
-                patch = DiffUtils.diff(a.contents, new ArrayList<>());
+                return strategy.diff(a.contents, new ArrayList<>());
             } else {
-                patch = DiffUtils.diff(a.contents, b.contents);
+                return strategy.diff(a.contents, b.contents);
             }
-            // generate the diff
+        }
+
+        /**
+         * Generate a diff between two FileContents.
+         *
+         * @param a before version, can be null
+         * @param b after version, can be null
+         * @return lines of the diff between versions
+         */
+        public static List<String> diff(FileContents a, FileContents b) {
+            return diff(a, b, patch(a, b));
+        }
+
+        /**
+         * Generate a diff between two FileContents from an existing patch.
+         *
+         * @param a     before version, can be null
+         * @param b     after version, can be null
+         * @param patch patch between the versions
+         * @return lines of the diff between versions
+         */
+        public static List<String> diff(FileContents a, FileContents b, Patch<String> patch) {
             List<String> originalLines = a == null ? new ArrayList<>() : a.contents;
             String name = a == null ? b.name : a.name;
-            return UnifiedDiffUtils.generateUnifiedDiff(name, name, originalLines, patch, 5);
+            return UnifiedDiffUtils.generateUnifiedDiff(name, name, originalLines, patch, CONTEXT_SIZE);
+        }
+
+        /**
+         * Write a diff between two FileContents to a file one hunk at a time.
+         * The output is identical to {@link #diff(FileContents, FileContents, Patch)}, but only the lines
+         * of the hunk currently being written are held in memory.
+         *
+         * @param a     before version, can be null
+         * @param b     after version, can be null
+         * @param patch patch between the versions
+         * @param file  file to write the diff to
+         */
+        @SneakyThrows
+        public static void writeDiff(FileContents a, FileContents b, Patch<String> patch, File file) {
+            List<String> originalLines = a == null ? new ArrayList<>() : a.contents;
+            String name = a == null ? b.name : a.name;
+            List<AbstractDelta<String>> deltas = patch.getDeltas();
+            if (deltas.isEmpty()) {
+                return;
+            }
+
+            try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                writer.write("--- " + name);
+                writer.newLine();
+                writer.write("+++ " + name);
+                writer.newLine();
+
+                // group deltas into hunks the same way UnifiedDiffUtils does,
+                // then let it render each hunk on its own
+                Patch<String> hunk = new Patch<>();
+                AbstractDelta<String> previous = null;
+                for (AbstractDelta<String> delta : deltas) {
+                    if (previous != null && previous.getSource().getPosition() + previous.getSource().size() + CONTEXT_SIZE
+                            < delta.getSource().getPosition() - CONTEXT_SIZE) {
+                        writeHunk(writer, name, originalLines, hunk);
+                        hunk = new Patch<>();
+                    }
+                    hunk.addDelta(delta);
+                    previous = delta;
+                }
+                writeHunk(writer, name, originalLines, hunk);
+            }
+        }
+
+        private static void writeHunk(BufferedWriter writer, String name, List<String> originalLines, Patch<String> hunk) throws IOException {
+            List<String> lines = UnifiedDiffUtils.generateUnifiedDiff(name, name, originalLines, hunk, CONTEXT_SIZE);
+            // skip the file header, it's only written once
+            for (int i = 2; i < lines.size(); i++) {
+                writer.write(lines.get(i));
+                writer.newLine();
+            }
         }
     }
 
@@ -254,15 +458,11 @@ public class VersionManager {
 
         System.out.println("Writing " + version + " client srg mappings");
         File clientMappingsFile = new File(home, version + "_client.srg");
-        PrintWriter clientWriter = new PrintWriter(new FileWriter(clientMappingsFile));
-        MappingFormats.SRG.createWriter(clientWriter).write(versionData.getClientMappings());
-        clientWriter.close();
+        writeSrg(versionData.getClientMappings(), clientMappingsFile);
 
         System.out.println("Writing " + version + " server srg mappings");
         File serverMappingsFile = new File(home, version + "_server.srg");
-        PrintWriter serverWriter = new PrintWriter(new FileWriter(serverMappingsFile));
-        MappingFormats.SRG.createWriter(serverWriter).write(versionData.getServerMappings());
-        serverWriter.close();
+        writeSrg(versionData.getServerMappings(), serverMappingsFile);
 
         System.out.println("Remapping client jar");
         File clientRemappedJarFile = new File(home, version + "_client_remapped.jar");
@@ -294,6 +494,49 @@ public class VersionManager {
         serverToClientPatchCollection.writeToDir(new File(decomp, "server_to_client"));
     }
 
+    /**
+     * Download only the client & server mappings of a version and write them as srg files,
+     * without the jars that {@link #downloadVersionFiles(String, File)} downloads & decompiles.
+     *
+     * @param version Minecraft version
+     * @param dir     directory containing the versions
+     * @return false if the version doesn't exist or has no Mojang mappings
+     */
+    @SneakyThrows
+    public static boolean downloadVersionMappings(String version, File dir) {
+        File home = new File(dir, version);
+        home.mkdirs();
+        File versionJsonFile = new File(home, version + ".json");
+        downloadVersionJson(version, versionJsonFile);
+        if (!versionJsonFile.exists()) return false;
+
+        JsonObject downloads;
+        try (Reader reader = new FileReader(versionJsonFile)) {
+            downloads = JsonParser.parseReader(reader).getAsJsonObject().getAsJsonObject("downloads");
+        }
+        if (!downloads.has("client_mappings") || !downloads.has("server_mappings")) return false;
+
+        for (Side side : Side.values()) {
+            System.out.println("Writing " + version + " " + side + " srg mappings");
+            URL mappingsUrl = new URL(downloads.getAsJsonObject(side + "_mappings").get("url").getAsString());
+            writeSrg(downloadMappings(mappingsUrl), new File(home, version + "_" + side + ".srg"));
+        }
+        return true;
+    }
+
+    /**
+     * Write srg mappings to a temporary file and move it into place, so an interrupted write never leaves a
+     * truncated srg file behind.
+     */
+    @SneakyThrows
+    private static void writeSrg(MappingSet mappings, File file) {
+        File partFile = new File(file.getPath() + ".part");
+        try (PrintWriter writer = new PrintWriter(new FileWriter(partFile))) {
+            MappingFormats.SRG.createWriter(writer).write(mappings);
+        }
+        Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
     /**
      * Decompile a jar into a destination folder using FernFlower.
      *
@@ -301,8 +544,14 @@ public class VersionManager {
      * @param destination place to dump files
      * @see org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences for the Fernflower args
      */
+    @SneakyThrows
     public static void decompile(File jar, File destination) {
         if (!destination.exists() || destination.listFiles().length == 0) {
+            // decompile next to the destination and move it into place when done,
+            // an interrupted run would leave a partial destination that's never redone
+            File tempDestination = new File(destination.getPath() + ".tmp");
+            deleteDirectory(tempDestination.toPath());
+            tempDestination.mkdirs();
             System.out.println("Decompiling " + jar.getPath() + " to " + destination.getPath());
             ConsoleDecompiler.main(new String[]{
                     "-din=1", // decompile inner classes
@@ -315,32 +564,27 @@ public class VersionManager {
                     "-udv=0", // don't use debug names since they're obfuscated
                     "-jvn=1", // use jad var naming
                     "-log=WARN", // TRACE for everything, INFO for class names, WARN for warnings, ERROR for errors
-                    jar.getAbsolutePath(), destination.getAbsolutePath()
+                    jar.getAbsolutePath(), tempDestination.getAbsolutePath()
             });
             System.out.println("Unzipping " + jar.getPath());
-            File destinationZip = new File(destination, jar.getName());
-            unzip(destinationZip, destination.toPath());
+            File destinationZip = new File(tempDestination, jar.getName());
+            unzip(destinationZip, tempDestination.toPath());
+
+            deleteDirectory(destination.toPath());
+            Files.move(tempDestination.toPath(), destination.toPath(), StandardCopyOption.ATOMIC_MOVE);
         }
     }
 
     /**
-     * Unzip a jar into a directory
+     * Unzip a jar into a directory, extracting entries in parallel
      *
      * @param jar       jar to unzip
      * @param targetDir directory to unzip into
      */
     @SneakyThrows
     public static void unzip(File jar, Path targetDir) {
-        try (ZipInputStream zipIn = new ZipInputStream(new FileInputStream(jar))) {
-            for (ZipEntry ze; (ze = zipIn.getNextEntry()) != null; ) {
-                Path resolvedPath = targetDir.resolve(ze.getName());
-                if (ze.isDirectory()) {
-                    Files.createDirectories(resolvedPath);
-                } else {
-                    Files.createDirectories(resolvedPath.getParent());
-                    Files.copy(zipIn, resolvedPath);
-                }
-            }
+        try (ZipIndex zip = ZipIndex.open(jar.toPath())) {
+            zip.extractAll(targetDir);
         }
     }
 
@@ -367,7 +611,10 @@ public class VersionManager {
 
         inheritanceProviders.add(new JarProvider(jar));
         JarRemapper jarRemapper = new JarRemapper(jarMapping);
-        jarRemapper.remapJar(jar, destination);
+        // remap to a temporary file, the check above would keep a truncated jar forever
+        File partFile = new File(mappedFile + ".part");
+        jarRemapper.remapJar(jar, partFile);
+        Files.move(partFile.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
 
     public static final String MANIFEST = "https://launchermeta.mojang.com/mc/game/version_manifest.json";
@@ -479,14 +726,17 @@ public class VersionManager {
     public static void downloadJar(URL url, File file) {
         if (file.exists()) return;
         file.getParentFile().mkdirs();
+        // download to a temporary file, the check above would keep a truncated jar forever
+        File partFile = new File(file.getPath() + ".part");
         try (BufferedInputStream in = new BufferedInputStream(url.openStream());
-             FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+             FileOutputStream fileOutputStream = new FileOutputStream(partFile)) {
             byte dataBuffer[] = new byte[1024];
             int bytesRead;
             while ((bytesRead = in.read(dataBuffer, 0, 1024)) != -1) {
                 fileOutputStream.write(dataBuffer, 0, bytesRead);
             }
         }
+        Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
 
     @SneakyThrows
@@ -533,4 +783,21 @@ public class VersionManager {
         }
     }
 
+    /**
+     * Delete a directory and everything in it, if it exists.
+     *
+     * @param directory directory to delete
+     */
+    @SneakyThrows
+    public static void deleteDirectory(Path directory) {
+        if (!Files.exists(directory)) return;
+        // walk doesn't follow symlinks, so only the links themselves are deleted.
+        // children sort after their parents, reversed they're deleted first
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,480 @@
+package io.jadon.mappings;
+
+import lombok.Data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Zip reader built on the central directory.
+ * Entries can be looked up by name without walking the archive, and their data is read with positional
+ * {@link FileChannel} reads so any number of threads can extract from the same archive at once.
+ */
+public class ZipIndex implements Closeable {
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int BUF_SIZE = 0x2000; // 8K
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries;
+
+    private ZipIndex(Path path, FileChannel channel, Map<String, Entry> entries) {
+        this.path = path;
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    /**
+     * Open a zip and read its central directory.
+     *
+     * @param path zip to open
+     * @return index of the zip's entries
+     * @throws IOException if the file can't be read or isn't a complete zip
+     */
+    public static ZipIndex open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new ZipIndex(path, channel, readCentralDirectory(path, channel));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check if a file is a complete zip.
+     *
+     * Every entry is read, so this is meant for small archives like mapping jars.
+     *
+     * @param path file to check
+     * @return true if the central directory can be read and every entry matches its size & CRC-32
+     */
+    public static boolean isValid(Path path) {
+        if (!Files.isRegularFile(path)) return false;
+        try (ZipIndex zip = open(path)) {
+            byte[] buf = new byte[BUF_SIZE];
+            for (Entry entry : zip.entries.values()) {
+                try (InputStream in = zip.openStream(entry)) {
+                    while (in.read(buf, 0, buf.length) != -1) {
+                        // the stream checks the size & CRC-32 when it ends
+                    }
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public Optional<Entry> getEntry(String name) {
+        return Optional.ofNullable(entries.get(name));
+    }
+
+    /**
+     * Find the first entry with a matching name.
+     *
+     * @param filter entry name filter
+     * @return the first matching entry in central directory order
+     */
+    public Optional<Entry> find(Predicate<String> filter) {
+        for (Entry entry : entries.values()) {
+            if (filter.test(entry.name)) {
+                return Optional.of(entry);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Open a stream of an entry's uncompressed contents.
+     * The stream reads straight from the archive, nothing is buffered beyond a small read buffer.
+     * Once the end is reached the contents are checked against the entry's size & CRC-32.
+     *
+     * @param entry entry to read
+     * @return stream of the entry's contents
+     * @throws IOException if the entry can't be read
+     */
+    public InputStream openStream(Entry entry) throws IOException {
+        InputStream in = new ChannelInputStream(channel, getDataOffset(entry), entry.compressedSize);
+        switch (entry.method) {
+            case STORED:
+                return new EntryCheckInputStream(in, entry, path);
+            case DEFLATED:
+                return new EntryCheckInputStream(new EntryInflaterInputStream(in), entry, path);
+            default:
+                in.close();
+                throw new IOException("Unsupported compression method " + entry.method + " for " + entry.name + " in " + path);
+        }
+    }
+
+    /**
+     * Write an entry's contents to a file, replacing it if it exists.
+     *
+     * @param entry  entry to extract
+     * @param target file to write to
+     * @throws IOException if the entry can't be read or the file can't be written
+     */
+    public void extract(Entry entry, Path target) throws IOException {
+        try (InputStream in = openStream(entry)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Extract every entry into a directory, in parallel.
+     *
+     * @param targetDir directory to extract into
+     * @throws IOException if an entry can't be read or written
+     */
+    public void extractAll(Path targetDir) throws IOException {
+        Path root = targetDir.toAbsolutePath().normalize();
+        try {
+            // a LinkedHashMap's values split into ever larger batches, a list splits evenly between threads
+            new ArrayList<>(entries.values()).parallelStream().forEach(entry -> {
+                Path resolvedPath = root.resolve(entry.name).normalize();
+                if (!resolvedPath.startsWith(root)) {
+                    throw new UncheckedIOException(new IOException("Entry " + entry.name + " is outside of " + root));
+                }
+                try {
+                    if (entry.isDirectory()) {
+                        Files.createDirectories(resolvedPath);
+                    } else {
+                        Files.createDirectories(resolvedPath.getParent());
+                        extract(entry, resolvedPath);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long getDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = read(channel, entry.localHeaderOffset, LOCAL_FILE_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_FILE_HEADER) {
+            throw new IOException("Bad local header for " + entry.name + " in " + path);
+        }
+        long dataOffset = entry.localHeaderOffset + LOCAL_FILE_HEADER_SIZE
+                + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+        if (dataOffset + entry.compressedSize > channel.size()) {
+            throw new IOException("Truncated data for " + entry.name + " in " + path);
+        }
+        return dataOffset;
+    }
+
+    private static Map<String, Entry> readCentralDirectory(Path path, FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            throw new IOException(path + " is too small to be a zip");
+        }
+
+        // the end record is followed by a comment of up to 64K, so scan backwards for its signature
+        int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+        ByteBuffer tail = read(channel, size - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new IOException("Missing central directory in " + path);
+        }
+
+        long entryCount = Short.toUnsignedInt(tail.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        long endPosition = size - tailSize + end;
+        if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            // zip64, the real values are in a second end record pointed to by a locator right before this one
+            if (endPosition < 20) {
+                throw new IOException("Missing zip64 end of central directory locator in " + path);
+            }
+            ByteBuffer locator = read(channel, endPosition - 20, 20);
+            if (locator.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+                throw new IOException("Missing zip64 end of central directory locator in " + path);
+            }
+            long zip64EndPosition = locator.getLong(8);
+            if (zip64EndPosition < 0 || zip64EndPosition > endPosition - 56) {
+                throw new IOException("Bad zip64 end of central directory in " + path);
+            }
+            ByteBuffer zip64End = read(channel, zip64EndPosition, 56);
+            if (zip64End.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                throw new IOException("Bad zip64 end of central directory in " + path);
+            }
+            entryCount = zip64End.getLong(32);
+            directorySize = zip64End.getLong(40);
+            directoryOffset = zip64End.getLong(48);
+        }
+        if (directoryOffset < 0 || directorySize < 0 || directorySize > Integer.MAX_VALUE
+                || directoryOffset + directorySize > size) {
+            throw new IOException("Truncated central directory in " + path);
+        }
+        // every header is at least 46 bytes, so a larger count can only come from a damaged end record
+        if (entryCount < 0 || entryCount > directorySize / 46) {
+            throw new IOException("Bad entry count " + entryCount + " in " + path);
+        }
+
+        ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+        Map<String, Entry> entries = new LinkedHashMap<>((int) Math.min(entryCount * 2, Integer.MAX_VALUE));
+        int position = 0;
+        for (long i = 0; i < entryCount; i++) {
+            if (position + 46 > directorySize || directory.getInt(position) != CENTRAL_DIRECTORY_HEADER) {
+                throw new IOException("Bad central directory header in " + path);
+            }
+            int method = Short.toUnsignedInt(directory.getShort(position + 10));
+            long crc = Integer.toUnsignedLong(directory.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            long uncompressedSize = Integer.toUnsignedLong(directory.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+            if (position + 46L + nameLength + extraLength + commentLength > directorySize) {
+                throw new IOException("Bad central directory header at " + (directoryOffset + position) + " in " + path);
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(position + 46);
+            directory.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // values that don't fit are stored in the zip64 extra field, in this order
+            int extra = position + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = Short.toUnsignedInt(directory.getShort(extra));
+                int length = Short.toUnsignedInt(directory.getShort(extra + 2));
+                if (extra + 4 + length > extraEnd) {
+                    throw new IOException("Bad central directory header at " + (directoryOffset + position) + " in " + path);
+                }
+                if (id == ZIP64_EXTRA_FIELD) {
+                    int field = extra + 4;
+                    int needed = (uncompressedSize == 0xFFFFFFFFL ? 8 : 0) + (compressedSize == 0xFFFFFFFFL ? 8 : 0)
+                            + (localHeaderOffset == 0xFFFFFFFFL ? 8 : 0);
+                    if (needed > length) {
+                        throw new IOException("Bad central directory header at " + (directoryOffset + position) + " in " + path);
+                    }
+                    if (uncompressedSize == 0xFFFFFFFFL) {
+                        uncompressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL) {
+                        localHeaderOffset = directory.getLong(field);
+                    }
+                    break;
+                }
+                extra += 4 + length;
+            }
+
+            if (compressedSize < 0 || uncompressedSize < 0 || localHeaderOffset < 0) {
+                throw new IOException("Bad central directory header at " + (directoryOffset + position) + " in " + path);
+            }
+            entries.put(name, new Entry(name, method, crc, compressedSize, uncompressedSize, localHeaderOffset));
+            position = extraEnd + commentLength;
+        }
+        return entries;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("Unexpected end of zip at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * An entry in the central directory.
+     */
+    @Data
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * Reads a region of a channel with positional reads, so it doesn't share a position with other readers.
+     */
+    private static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        ChannelInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (n == -1) {
+                throw new EOFException("Unexpected end of zip at " + position);
+            }
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Counts & checksums an entry's contents, and fails at the end if they don't match the central directory.
+     */
+    private static class EntryCheckInputStream extends FilterInputStream {
+        private final Entry entry;
+        private final Path path;
+        private final CRC32 crc = new CRC32();
+        private long count;
+        private boolean checked;
+
+        EntryCheckInputStream(InputStream in, Entry entry, Path path) {
+            super(in);
+            this.entry = entry;
+            this.path = path;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n == -1) {
+                check();
+                return -1;
+            }
+            crc.update(b, off, n);
+            count += n;
+            if (count > entry.size) {
+                throw new IOException("Entry " + entry.name + " in " + path + " is larger than " + entry.size + " bytes");
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes still have to be checksummed
+            byte[] b = new byte[(int) Math.min(n, BUF_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(b, 0, (int) Math.min(n - skipped, b.length));
+                if (read == -1) break;
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void check() throws IOException {
+            if (checked) return;
+            checked = true;
+            if (count != entry.size) {
+                throw new IOException("Entry " + entry.name + " in " + path + " is " + count + " bytes, expected " + entry.size);
+            }
+            if (crc.getValue() != entry.crc) {
+                throw new IOException("CRC-32 mismatch for " + entry.name + " in " + path);
+            }
+        }
+    }
+
+    /**
+     * Inflates raw deflate data, feeding the inflater the extra dummy byte it can need at the end of a nowrap stream.
+     */
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean eof;
+
+        EntryInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true), BUF_SIZE);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of deflated zip entry");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            inf.end();
+        }
+    }
+}
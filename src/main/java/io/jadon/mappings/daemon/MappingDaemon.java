@@ -0,0 +1,145 @@
+package io.jadon.mappings.daemon;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.jadon.mappings.Side;
+import lombok.SneakyThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Local HTTP server answering mapping queries from a {@link MappingService}, so mappings stay loaded between uses.
+ * Only listens on the loopback address. Every endpoint is a GET returning plain text:
+ * <ul>
+ *     <li>{@code /map?version=1.16&side=client&from=official&to=mojang&name=a.b}</li>
+ *     <li>{@code /diff?a=1.16.1&b=1.16.2-rc1}</li>
+ *     <li>{@code /intermediary2mojang?version=1.16}</li>
+ * </ul>
+ */
+public class MappingDaemon {
+
+    public static final int DEFAULT_PORT = 25580;
+
+    private final MappingService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    @SneakyThrows
+    public MappingDaemon(MappingService service, int port) {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // requests block on downloads & decompiling, so give each one its own thread
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/map", exchange -> handle(exchange, this::map));
+        server.createContext("/diff", exchange -> handle(exchange, this::diff));
+        server.createContext("/intermediary2mojang", exchange -> handle(exchange, this::intermediaryToMojang));
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Mapping daemon listening on " + server.getAddress());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private String map(Map<String, String> query) {
+        String name = require(query, "name");
+        return service.mapName(require(query, "version"), side(query), require(query, "from"), require(query, "to"), name)
+                .orElseThrow(() -> new NoSuchElementException("No mapping for " + name));
+    }
+
+    private String diff(Map<String, String> query) {
+        return service.diff(require(query, "a"), require(query, "b"));
+    }
+
+    private String intermediaryToMojang(Map<String, String> query) {
+        return service.getIntermediaryToMojang(require(query, "version"));
+    }
+
+    private static Side side(Map<String, String> query) {
+        String side = query.getOrDefault("side", Side.CLIENT.toString());
+        for (Side value : Side.values()) {
+            if (value.toString().equals(side)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unknown side " + side);
+    }
+
+    private static String require(Map<String, String> query, String key) {
+        String value = query.get(key);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter " + key);
+        }
+        return value;
+    }
+
+    private static void handle(HttpExchange exchange, Function<Map<String, String>, String> handler) throws IOException {
+        int status;
+        String response;
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                status = 405;
+                response = "Only GET is supported\n";
+            } else {
+                status = 200;
+                response = handler.apply(parseQuery(exchange.getRequestURI().getRawQuery()));
+            }
+        } catch (Throwable t) {
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof IllegalArgumentException) {
+                status = 400;
+                response = cause.getMessage() + "\n";
+            } else if (cause instanceof NoSuchElementException) {
+                status = 404;
+                response = cause.getMessage() + "\n";
+            } else {
+                status = 500;
+                StringWriter stackTrace = new StringWriter();
+                cause.printStackTrace(new PrintWriter(stackTrace));
+                response = stackTrace.toString();
+                cause.printStackTrace();
+            }
+        }
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @SneakyThrows
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) return params;
+        for (String param : query.split("&")) {
+            int index = param.indexOf('=');
+            if (index == -1) {
+                params.put(URLDecoder.decode(param, "UTF-8"), "");
+            } else {
+                params.put(URLDecoder.decode(param.substring(0, index), "UTF-8"), URLDecoder.decode(param.substring(index + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,255 @@
+package io.jadon.mappings.daemon;
+
+import io.jadon.mappings.GameVersion;
+import io.jadon.mappings.Mojmap;
+import io.jadon.mappings.Side;
+import io.jadon.mappings.VersionManager;
+import io.jadon.mappings.yarn.YarnMappings;
+import lombok.SneakyThrows;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingFormats;
+import org.cadixdev.lorenz.io.MappingsWriter;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Answers mapping queries from mappings kept in memory between requests.
+ * Everything is loaded on first use and each distinct value is only ever loaded once, even under concurrent requests.
+ */
+public class MappingService {
+
+    public static final String OFFICIAL = "official";
+    public static final String MOJANG = "mojang";
+    public static final String INTERMEDIARY = "intermediary";
+
+    private final File dir;
+    private final ConcurrentMap<String, CompletableFuture<MappingSet>> mappings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<String>> texts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Boolean>> downloads = new ConcurrentHashMap<>();
+
+    /**
+     * @param dir directory containing the versions
+     */
+    public MappingService(File dir) {
+        this.dir = dir;
+    }
+
+    public MappingService() {
+        this(GameVersion.VERSIONS_DIR);
+    }
+
+    /**
+     * Get the mappings between two namespaces of a version.
+     *
+     * @param version Minecraft version
+     * @param side    client or server, intermediary names are the same for both
+     * @param from    namespace to map from
+     * @param to      namespace to map to
+     * @return mappings from one namespace to the other
+     */
+    public MappingSet getMappings(String version, Side side, String from, String to) {
+        // intermediary is loaded from the same files for both sides, so it has to share one key
+        String sideKey = isSideless(from) && isSideless(to) ? "*" : side.toString();
+        return cached(mappings, version + ":" + sideKey + ":" + from + ":" + to, () -> {
+            if (from.equals(to)) {
+                throw new IllegalArgumentException("Can't map " + from + " to itself");
+            } else if (from.equals(OFFICIAL)) {
+                return loadMappings(version, side, to);
+            } else if (to.equals(OFFICIAL)) {
+                return getMappings(version, side, OFFICIAL, from).reverse();
+            } else {
+                // srg mappings don't have field descriptors, so strip them before merging
+                return Mojmap.removeFieldDescriptors(getMappings(version, side, OFFICIAL, from)).reverse()
+                        .merge(getMappings(version, side, OFFICIAL, to));
+            }
+        });
+    }
+
+    /**
+     * Map a class or member name between namespaces.
+     *
+     * @param version Minecraft version
+     * @param side    client or server
+     * @param from    namespace of the name
+     * @param to      namespace to map the name to
+     * @param name    internal class name, optionally followed by {@code .member} and a method descriptor,
+     *                e.g. {@code a$b}, {@code a.c} or {@code a.d(I)V}
+     * @return the mapped name, if there is one
+     */
+    public Optional<String> mapName(String version, Side side, String from, String to, String name) {
+        MappingSet mappingSet = getMappings(version, side, from, to);
+        int memberIndex = name.lastIndexOf('.');
+        if (memberIndex == -1) {
+            return mappingSet.getClassMapping(name).map(ClassMapping::getFullDeobfuscatedName);
+        }
+
+        Optional<? extends ClassMapping<?, ?>> classMapping = mappingSet.getClassMapping(name.substring(0, memberIndex));
+        if (!classMapping.isPresent()) {
+            return Optional.empty();
+        }
+        String owner = classMapping.get().getFullDeobfuscatedName();
+        String member = name.substring(memberIndex + 1);
+        int descriptorIndex = member.indexOf('(');
+        if (descriptorIndex != -1) {
+            return classMapping.get().getMethodMapping(member.substring(0, descriptorIndex), member.substring(descriptorIndex))
+                    .map(method -> owner + "." + method.getDeobfuscatedName() + method.getDeobfuscatedDescriptor());
+        }
+
+        Optional<FieldMapping> field = classMapping.get().getFieldMapping(member);
+        if (field.isPresent()) {
+            return Optional.of(owner + "." + field.get().getDeobfuscatedName());
+        }
+        // without a descriptor any overload will do, they share a name in every namespace we have
+        for (MethodMapping method : classMapping.get().getMethodMappings()) {
+            if (method.getObfuscatedName().equals(member)) {
+                return Optional.of(owner + "." + method.getDeobfuscatedName());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Create patches between two versions, or reuse the ones already written.
+     *
+     * @param versionA before version
+     * @param versionB after version
+     * @return client & server reports of changed files
+     */
+    public String diff(String versionA, String versionB) {
+        return cached(texts, "diff:" + versionA + ":" + versionB, () -> {
+            ensureVersion(versionA);
+            ensureVersion(versionB);
+            // side directories are only moved into place once all of their patches are written
+            File patchDir = new File(dir, versionA + "_to_" + versionB);
+            boolean complete = true;
+            for (Side side : Side.values()) {
+                complete &= new File(patchDir, side.toString()).isDirectory();
+            }
+            if (!complete) {
+                VersionManager.diffVersions(dir, versionA, versionB, true);
+            }
+            StringBuilder report = new StringBuilder();
+            for (Side side : Side.values()) {
+                report.append("# ").append(side).append('\n');
+                report.append(readReport(new File(patchDir, side + "/report.txt")));
+            }
+            return report.toString();
+        });
+    }
+
+    /**
+     * Generate intermediary -> mojang client mappings, as written by {@link Mojmap#generateLunarMappings(GameVersion)}.
+     *
+     * @param version Minecraft version
+     * @return srg mappings
+     */
+    public String getIntermediaryToMojang(String version) {
+        return cached(texts, "intermediary2mojang:" + version, () ->
+                writeSrg(getMappings(version, Side.CLIENT, INTERMEDIARY, MOJANG)));
+    }
+
+    private MappingSet loadMappings(String version, Side side, String namespace) {
+        switch (namespace) {
+            case MOJANG:
+                return readSrg(version, side);
+            case INTERMEDIARY:
+                return YarnMappings.getIntermediaryMappings(version, new File(dir, version), false);
+            default:
+                throw new IllegalArgumentException("Unknown namespace " + namespace);
+        }
+    }
+
+    @SneakyThrows
+    private MappingSet readSrg(String version, Side side) {
+        ensureMappings(version);
+        return MappingFormats.SRG.read(new File(dir, version + "/" + version + "_" + side + ".srg").toPath());
+    }
+
+    /**
+     * Download the srg mappings of a version unless they're already there. Mapping queries only need these,
+     * so they don't wait for the jars to be remapped & decompiled.
+     */
+    private void ensureMappings(String version) {
+        cached(downloads, "mappings:" + version, () -> {
+            boolean present = true;
+            for (Side side : Side.values()) {
+                present &= new File(dir, version + "/" + version + "_" + side + ".srg").exists();
+            }
+            if (!present && !VersionManager.downloadVersionMappings(version, dir)) {
+                throw new NoSuchElementException("No Mojang mappings for " + version);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Download, remap & decompile a version unless a previous run finished doing so.
+     * Every request for the version waits on the same download. Each step writes to a temporary file or
+     * directory that's moved into place when done, so a rerun after an interrupted one redoes the unfinished steps.
+     */
+    private void ensureVersion(String version) {
+        ensureMappings(version);
+        cached(downloads, "download:" + version, () -> {
+            File marker = new File(dir, version + "/.complete");
+            if (!marker.exists()) {
+                VersionManager.downloadVersionFiles(version, dir);
+                writeMarker(marker);
+            }
+            return true;
+        });
+    }
+
+    @SneakyThrows
+    private static void writeMarker(File marker) {
+        Files.write(marker.toPath(), new byte[0]);
+    }
+
+    private static boolean isSideless(String namespace) {
+        return namespace.equals(OFFICIAL) || namespace.equals(INTERMEDIARY);
+    }
+
+    @SneakyThrows
+    private static String readReport(File file) {
+        return file.exists() ? new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8) : "";
+    }
+
+    @SneakyThrows
+    private static String writeSrg(MappingSet mappingSet) {
+        StringWriter writer = new StringWriter();
+        try (MappingsWriter mappingsWriter = MappingFormats.SRG.createWriter(writer)) {
+            mappingsWriter.write(mappingSet);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Get a value from a cache, loading it if no other thread already is.
+     * Failed loads aren't cached so they can be retried.
+     */
+    private static <T> T cached(ConcurrentMap<String, CompletableFuture<T>> cache, String key, Supplier<T> loader) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> existing = cache.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            future.complete(loader.get());
+        } catch (Throwable t) {
+            cache.remove(key, future);
+            future.completeExceptionally(t);
+        }
+        return future.join();
+    }
+}
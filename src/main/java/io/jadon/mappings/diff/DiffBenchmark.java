@@ -0,0 +1,105 @@
+package io.jadon.mappings.diff;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.Patch;
+import io.jadon.mappings.VersionManager;
+import io.jadon.mappings.VersionManager.FileContents;
+import lombok.SneakyThrows;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times each {@link DiffStrategy} on the decompiled sources of two versions.
+ * Usage: {@code DiffBenchmark <versions dir> <version a> <version b> [side]}
+ */
+public class DiffBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int SLOWEST_FILES = 10;
+
+    public static void main(String[] args) {
+        File dir = new File(args.length > 0 ? args[0] : "versions/");
+        String versionA = args.length > 1 ? args[1] : "1.17.1";
+        String versionB = args.length > 2 ? args[2] : "21w37a";
+        String side = args.length > 3 ? args[3] : "client";
+
+        List<FileContents[]> pairs = readPairs(new File(dir, versionA + "/decomp/" + side), new File(dir, versionB + "/decomp/" + side));
+        System.out.println("Benchmarking " + pairs.size() + " file pairs from " + versionA + " -> " + versionB + " (" + side + ")");
+
+        for (DiffStrategy strategy : DiffStrategy.values()) {
+            verify(strategy, pairs);
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                run(strategy, pairs, null);
+            }
+            long[] fileTimes = new long[pairs.size()];
+            long total = 0;
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                total += run(strategy, pairs, fileTimes);
+            }
+            System.out.printf("%-10s %10.2f ms/round%n", strategy, total / MEASURED_ROUNDS / 1e6);
+
+            List<Integer> slowest = new ArrayList<>();
+            for (int i = 0; i < pairs.size(); i++) {
+                slowest.add(i);
+            }
+            slowest.sort(Comparator.comparingLong((Integer i) -> fileTimes[i]).reversed());
+            for (int i = 0; i < Math.min(SLOWEST_FILES, slowest.size()); i++) {
+                FileContents[] pair = pairs.get(slowest.get(i));
+                System.out.printf("    %10.2f ms  %s (%d -> %d lines)%n", fileTimes[slowest.get(i)] / MEASURED_ROUNDS / 1e6,
+                        pair[0].getName(), pair[0].getContents().size(), pair[1].getContents().size());
+            }
+        }
+    }
+
+    /**
+     * Read the files that exist in both directories and differ.
+     */
+    private static List<FileContents[]> readPairs(File dirA, File dirB) {
+        Map<String, FileContents> filesA = new HashMap<>();
+        for (FileContents fileContents : VersionManager.readSourceFiles(dirA)) {
+            filesA.put(fileContents.getName(), fileContents);
+        }
+        List<FileContents[]> pairs = new ArrayList<>();
+        for (FileContents b : VersionManager.readSourceFiles(dirB)) {
+            FileContents a = filesA.get(b.getName());
+            if (a != null && !a.getContents().equals(b.getContents())) {
+                pairs.add(new FileContents[]{a, b});
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Check that every patch turns the before file into the after file, timings of a wrong diff are meaningless.
+     */
+    @SneakyThrows
+    private static void verify(DiffStrategy strategy, List<FileContents[]> pairs) {
+        for (FileContents[] pair : pairs) {
+            Patch<String> patch = FileContents.patch(pair[0], pair[1], strategy);
+            if (!DiffUtils.patch(pair[0].getContents(), patch).equals(pair[1].getContents())) {
+                throw new IllegalStateException(strategy + " created a wrong patch for " + pair[0].getName());
+            }
+        }
+    }
+
+    private static long run(DiffStrategy strategy, List<FileContents[]> pairs, long[] fileTimes) {
+        long total = 0;
+        for (int i = 0; i < pairs.size(); i++) {
+            FileContents[] pair = pairs.get(i);
+            long start = System.nanoTime();
+            FileContents.patch(pair[0], pair[1], strategy);
+            long time = System.nanoTime() - start;
+            if (fileTimes != null) {
+                fileTimes[i] += time;
+            }
+            total += time;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,94 @@
+package io.jadon.mappings.diff;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.algorithm.DiffAlgorithmI;
+import com.github.difflib.algorithm.jgit.HistogramDiff;
+import com.github.difflib.algorithm.myers.MyersDiff;
+import com.github.difflib.patch.Patch;
+import lombok.SneakyThrows;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Algorithms used to diff source files.
+ */
+public enum DiffStrategy {
+    /**
+     * java-diff-utils' default, O(ND) so it slows down badly on large files with many changes.
+     */
+    MYERS {
+        @Override
+        public <T> DiffAlgorithmI<T> createAlgorithm() {
+            return new MyersDiff<>();
+        }
+    },
+    /**
+     * JGit's histogram diff, anchors on unique lines so big rewritten regions stay fast.
+     */
+    HISTOGRAM {
+        @Override
+        public <T> DiffAlgorithmI<T> createAlgorithm() {
+            return new HistogramDiff<>();
+        }
+    },
+    /**
+     * Trims the common prefix & suffix, then uses Myers when its estimated cost on the changed region is low
+     * and histogram otherwise.
+     */
+    AUTO {
+        @Override
+        public <T> DiffAlgorithmI<T> createAlgorithm() {
+            return new TrimmedDiff<>((source, target) -> estimateMyersCost(source, target) <= MYERS_MAX_COST
+                    ? MYERS.createAlgorithm() : HISTOGRAM.createAlgorithm());
+        }
+    };
+
+    /**
+     * Largest estimated Myers cost (lines in the changed region times edits) that's still diffed with Myers
+     * when using {@link #AUTO}. Regions of up to 2000 lines in total always fit.
+     */
+    public static final long MYERS_MAX_COST = 4_000_000L;
+
+    /**
+     * Estimate the O(ND) cost of diffing two regions with Myers.
+     * N is the size of both regions. D is estimated from the density of the change: the lines of each region
+     * that appear nowhere in the other have to be an insert or a delete, so their count is a lower bound of D.
+     *
+     * @param source before region
+     * @param target after region
+     * @return estimated cost
+     */
+    static <T> long estimateMyersCost(List<T> source, List<T> target) {
+        long size = source.size() + target.size();
+        // even a complete rewrite is cheap, no need to look at the lines
+        if (size * size <= MYERS_MAX_COST) {
+            return size * size;
+        }
+        Set<T> sourceLines = new HashSet<>(source);
+        Set<T> targetLines = new HashSet<>(target);
+        long edits = 0;
+        for (T line : source) {
+            if (!targetLines.contains(line)) edits++;
+        }
+        for (T line : target) {
+            if (!sourceLines.contains(line)) edits++;
+        }
+        return size * Math.max(edits, 1);
+    }
+
+    public abstract <T> DiffAlgorithmI<T> createAlgorithm();
+
+    /**
+     * Create a patch between two lists using this strategy.
+     *
+     * @param original before version
+     * @param revised  after version
+     * @return patch between the lists
+     */
+    @SneakyThrows
+    public <T> Patch<T> diff(List<T> original, List<T> revised) {
+        return DiffUtils.diff(original, revised, createAlgorithm(), null);
+    }
+}
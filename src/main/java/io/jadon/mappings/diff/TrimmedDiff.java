@@ -0,0 +1,70 @@
+package io.jadon.mappings.diff;
+
+import com.github.difflib.algorithm.Change;
+import com.github.difflib.algorithm.DiffAlgorithmI;
+import com.github.difflib.algorithm.DiffAlgorithmListener;
+import com.github.difflib.patch.DeltaType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Diff algorithm that strips the common prefix & suffix before handing the changed region to another algorithm.
+ * Generated files mostly grow at the end, so this usually leaves a tiny region to diff.
+ */
+public class TrimmedDiff<T> implements DiffAlgorithmI<T> {
+
+    private final BiFunction<List<T>, List<T>, DiffAlgorithmI<T>> selector;
+
+    /**
+     * @param selector picks the algorithm to use from the source & target regions left after trimming
+     */
+    public TrimmedDiff(BiFunction<List<T>, List<T>, DiffAlgorithmI<T>> selector) {
+        this.selector = selector;
+    }
+
+    @Override
+    public List<Change> computeDiff(List<T> source, List<T> target, DiffAlgorithmListener progress) {
+        int sourceSize = source.size();
+        int targetSize = target.size();
+        int minSize = Math.min(sourceSize, targetSize);
+
+        int prefix = 0;
+        while (prefix < minSize && source.get(prefix).equals(target.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < minSize - prefix && source.get(sourceSize - suffix - 1).equals(target.get(targetSize - suffix - 1))) {
+            suffix++;
+        }
+
+        int sourceEnd = sourceSize - suffix;
+        int targetEnd = targetSize - suffix;
+        if (prefix == sourceEnd && prefix == targetEnd) {
+            return Collections.emptyList();
+        } else if (prefix == sourceEnd) {
+            return Collections.singletonList(new Change(DeltaType.INSERT, prefix, sourceEnd, prefix, targetEnd));
+        } else if (prefix == targetEnd) {
+            return Collections.singletonList(new Change(DeltaType.DELETE, prefix, sourceEnd, prefix, targetEnd));
+        }
+
+        List<T> sourceRegion = source.subList(prefix, sourceEnd);
+        List<T> targetRegion = target.subList(prefix, targetEnd);
+        DiffAlgorithmI<T> algorithm = selector.apply(sourceRegion, targetRegion);
+        List<Change> changes = algorithm.computeDiff(sourceRegion, targetRegion, progress);
+        if (prefix == 0) {
+            return changes;
+        }
+
+        // move the changes back to their position in the full lists
+        List<Change> shifted = new ArrayList<>(changes.size());
+        for (Change change : changes) {
+            shifted.add(new Change(change.deltaType,
+                    change.startOriginal + prefix, change.endOriginal + prefix,
+                    change.startRevised + prefix, change.endRevised + prefix));
+        }
+        return shifted;
+    }
+}
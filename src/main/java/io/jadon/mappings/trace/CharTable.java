@@ -0,0 +1,70 @@
+package io.jadon.mappings.trace;
+
+import java.util.Map;
+
+/**
+ * Read-only open addressing hash table from strings to strings that's queried with a range of a char array,
+ * so looking up part of a line doesn't need a substring.
+ */
+class CharTable {
+
+    private final String[] keys;
+    private final String[] values;
+    private final int[] hashes;
+    private final int mask;
+
+    CharTable(Map<String, String> entries) {
+        int capacity = Integer.highestOneBit(Math.max(entries.size(), 1) * 2 - 1) << 1;
+        this.keys = new String[capacity];
+        this.values = new String[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            int hash = key.hashCode();
+            int slot = mix(hash) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = entry.getValue();
+            hashes[slot] = hash;
+        }
+    }
+
+    /**
+     * Look up the value for {@code chars[start, end)}.
+     *
+     * @return the value, or null if the key isn't in the table
+     */
+    String get(char[] chars, int start, int end) {
+        // same hash as String#hashCode, so keys can be hashed once when the table is built
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int length = end - start;
+        for (int slot = mix(hash) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(keys[slot], chars, start, length)) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String key, char[] chars, int start, int length) {
+        if (key.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != chars[start + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Scramble the hash, String hashes of short names like {@code a} & {@code ab} are clustered together.
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
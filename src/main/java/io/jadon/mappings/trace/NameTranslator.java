@@ -0,0 +1,261 @@
+package io.jadon.mappings.trace;
+
+import lombok.SneakyThrows;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingFormats;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.InnerClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites obfuscated class & member names in stack traces and logs.
+ * <p>
+ * Names are matched as whole tokens of identifier characters, {@code .} and {@code $}:
+ * <ul>
+ *     <li>{@code owner.member} is translated when the owner is a known class, e.g. {@code at dxo.a(SourceFile:12)}.
+ *     Stack traces don't have descriptors, so overloads with different names are all listed, separated by {@code |}.
+ *     If only the owner is known, it's still translated in front of a {@code (} like in a stack frame</li>
+ *     <li>a class on its own is only translated if it's an inner class or an exception header followed by {@code :}.
+ *     That's after {@code Caused by: }, {@code Suppressed: } or {@code Exception in thread "..." }, or at the start of
+ *     a line that's followed by a stack frame, like {@code dxo: message} above {@code at dxo.a(SourceFile:12)}.
+ *     Obfuscated names are short enough that plain words would match otherwise, e.g. {@code id: 5}</li>
+ * </ul>
+ * Lookups run on ranges of a reused char buffer, so translating a line doesn't allocate.
+ * Instances are immutable and can be shared between threads.
+ */
+public class NameTranslator {
+
+    private static final int BUF_SIZE = 0x2000; // 8K
+    private static final String CAUSED_BY = "Caused by: ";
+    private static final String SUPPRESSED = "Suppressed: ";
+    private static final String THREAD_HEADER = "Exception in thread \"";
+
+    private final CharTable classes;
+    private final CharTable members;
+
+    /**
+     * @param mappings obfuscated -> deobfuscated mappings, like the srg files written by
+     *                 {@link io.jadon.mappings.VersionManager#downloadVersionFiles(String, java.io.File)}
+     */
+    public NameTranslator(MappingSet mappings) {
+        Map<String, String> classNames = new HashMap<>();
+        Map<String, String> memberNames = new HashMap<>();
+        for (TopLevelClassMapping classMapping : mappings.getTopLevelClassMappings()) {
+            addClass(classMapping, classNames, memberNames);
+        }
+        this.classes = new CharTable(classNames);
+        this.members = new CharTable(memberNames);
+    }
+
+    /**
+     * Read srg mappings and build a translator from them.
+     *
+     * @param srgFile obfuscated -> deobfuscated srg mappings
+     * @return translator for the mappings
+     */
+    @SneakyThrows
+    public static NameTranslator read(Path srgFile) {
+        return new NameTranslator(MappingFormats.SRG.read(srgFile));
+    }
+
+    private static void addClass(ClassMapping<?, ?> classMapping, Map<String, String> classNames, Map<String, String> memberNames) {
+        String obfuscatedName = classMapping.getFullObfuscatedName().replace('/', '.');
+        String deobfuscatedName = classMapping.getFullDeobfuscatedName().replace('/', '.');
+        classNames.put(obfuscatedName, deobfuscatedName);
+
+        // fields & methods share a table, a log line can't tell them apart
+        Map<String, Set<String>> names = new HashMap<>();
+        for (FieldMapping fieldMapping : classMapping.getFieldMappings()) {
+            names.computeIfAbsent(fieldMapping.getObfuscatedName(), k -> new LinkedHashSet<>()).add(fieldMapping.getDeobfuscatedName());
+        }
+        for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+            names.computeIfAbsent(methodMapping.getObfuscatedName(), k -> new LinkedHashSet<>()).add(methodMapping.getDeobfuscatedName());
+        }
+        for (Map.Entry<String, Set<String>> entry : names.entrySet()) {
+            memberNames.put(obfuscatedName + "." + entry.getKey(), deobfuscatedName + "." + String.join("|", entry.getValue()));
+        }
+        for (InnerClassMapping innerClassMapping : classMapping.getInnerClassMappings()) {
+            addClass(innerClassMapping, classNames, memberNames);
+        }
+    }
+
+    /**
+     * Translate a piece of text.
+     *
+     * @param text text containing obfuscated names
+     * @return the text with the names translated
+     */
+    @SneakyThrows
+    public String translate(String text) {
+        StringWriter writer = new StringWriter(text.length() + 16);
+        char[] chars = text.toCharArray();
+        translate(chars, 0, chars.length, chars.length, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Translate everything from a reader into a writer.
+     * Text is processed in chunks split on line breaks, only one buffer is allocated for the whole stream.
+     * Neither the reader nor the writer are closed.
+     *
+     * @param in  text containing obfuscated names
+     * @param out where to write the translated text
+     * @throws IOException if reading or writing fails
+     */
+    public void translate(Reader in, Writer out) throws IOException {
+        char[] buf = new char[BUF_SIZE];
+        int length = 0;
+        for (int read; (read = in.read(buf, length, buf.length - length)) != -1; ) {
+            length += read;
+            // only translate complete lines that are followed by another complete line,
+            // so no name gets split between chunks and exception headers can see the next line
+            int end = lineStart(buf, lineStart(buf, length) - 1);
+            if (end <= 0) {
+                if (length == buf.length) {
+                    // a single line longer than the buffer
+                    char[] larger = new char[buf.length * 2];
+                    System.arraycopy(buf, 0, larger, 0, length);
+                    buf = larger;
+                }
+                continue;
+            }
+            translate(buf, 0, end, length, out);
+            System.arraycopy(buf, end, buf, 0, length - end);
+            length -= end;
+        }
+        translate(buf, 0, length, length, out);
+    }
+
+    /**
+     * Find where the line containing {@code chars[index - 1]} starts.
+     *
+     * @return the index after the previous line break, 0 if there's none and -1 if {@code index} is negative
+     */
+    private static int lineStart(char[] chars, int index) {
+        if (index < 0) return -1;
+        while (index > 0 && chars[index - 1] != '\n') {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Translate {@code chars[start, end)}, text up to {@code limit} may be read to tell what the names are.
+     */
+    private void translate(char[] chars, int start, int end, int limit, Writer out) throws IOException {
+        // text between names is written in one go
+        int copied = start;
+        int i = start;
+        while (i < end) {
+            if (!isNameChar(chars[i])) {
+                i++;
+                continue;
+            }
+            int tokenStart = i;
+            while (i < end && isNameChar(chars[i])) {
+                i++;
+            }
+            int tokenEnd = i;
+            // trailing dots are punctuation, not part of the name
+            while (tokenEnd > tokenStart && chars[tokenEnd - 1] == '.') {
+                tokenEnd--;
+            }
+            if (tokenEnd == tokenStart) {
+                continue;
+            }
+            int lastDot = -1;
+            boolean inner = false;
+            for (int j = tokenStart; j < tokenEnd; j++) {
+                if (chars[j] == '.') {
+                    lastDot = j;
+                } else if (chars[j] == '$') {
+                    inner = true;
+                }
+            }
+
+            String translated = null;
+            int translatedEnd = tokenEnd;
+            if (inner || (tokenEnd < end && chars[tokenEnd] == ':')) {
+                translated = classes.get(chars, tokenStart, tokenEnd);
+                // the lookup is cheaper & misses on names like SourceFile, so only check the position of hits
+                if (translated != null && !inner && !isExceptionHeader(chars, start, limit, tokenStart, tokenEnd)) {
+                    translated = null;
+                }
+            }
+            if (translated == null && lastDot != -1) {
+                String owner = classes.get(chars, tokenStart, lastDot);
+                if (owner != null) {
+                    translated = members.get(chars, tokenStart, tokenEnd);
+                    if (translated == null && tokenEnd < end && chars[tokenEnd] == '(') {
+                        // unknown method like a lambda in a stack frame, still translate the owner
+                        translated = owner;
+                        translatedEnd = lastDot;
+                    }
+                }
+            }
+
+            if (translated != null) {
+                out.write(chars, copied, tokenStart - copied);
+                out.write(translated);
+                copied = translatedEnd;
+            }
+        }
+        out.write(chars, copied, end - copied);
+    }
+
+    /**
+     * Check if the name at {@code [tokenStart, tokenEnd)} is where a stack trace puts the exception class.
+     */
+    private static boolean isExceptionHeader(char[] chars, int start, int limit, int tokenStart, int tokenEnd) {
+        int lineStart = tokenStart;
+        while (lineStart > start && chars[lineStart - 1] != '\n') {
+            lineStart--;
+        }
+        while (lineStart < tokenStart && Character.isWhitespace(chars[lineStart])) {
+            lineStart++;
+        }
+        if (lineStart == tokenStart) {
+            // a bare "name: text" line is only a header if the trace follows it
+            int next = tokenEnd;
+            while (next < limit && chars[next] != '\n') {
+                next++;
+            }
+            next++;
+            while (next < limit && (chars[next] == ' ' || chars[next] == '\t')) {
+                next++;
+            }
+            return next + 3 <= limit && chars[next] == 'a' && chars[next + 1] == 't' && chars[next + 2] == ' ';
+        }
+        return regionEquals(chars, lineStart, tokenStart, CAUSED_BY) || regionEquals(chars, lineStart, tokenStart, SUPPRESSED)
+                || (tokenStart - lineStart > THREAD_HEADER.length() + 1
+                && regionEquals(chars, lineStart, lineStart + THREAD_HEADER.length(), THREAD_HEADER)
+                && regionEquals(chars, tokenStart - 2, tokenStart, "\" "));
+    }
+
+    /**
+     * Compare {@code chars[start, end)} to a string without copying the range.
+     */
+    private static boolean regionEquals(char[] chars, int start, int end, String string) {
+        if (end - start != string.length()) return false;
+        for (int i = 0; i < string.length(); i++) {
+            if (chars[start + i] != string.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isNameChar(char c) {
+        return c == '.' || c == '$' || Character.isJavaIdentifierPart(c);
+    }
+}
@@ -0,0 +1,106 @@
+package io.jadon.mappings.trace;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingFormats;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.InnerClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures {@link NameTranslator} throughput on stack traces made from a version's own obfuscated names.
+ * Usage: {@code NameTranslatorBenchmark <srg file> [lines]}
+ */
+public class NameTranslatorBenchmark {
+
+    private static final int ROUNDS = 10;
+    private static final int FRAMES_PER_TRACE = 20;
+
+    public static void main(String[] args) throws IOException {
+        String srgFile = args.length > 0 ? args[0] : "versions/1.16/1.16_client.srg";
+        int lineCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        long start = System.nanoTime();
+        MappingSet mappings = MappingFormats.SRG.read(Paths.get(srgFile));
+        NameTranslator translator = new NameTranslator(mappings);
+        System.out.printf("Built translator from %s in %.2f ms%n", srgFile, (System.nanoTime() - start) / 1e6);
+
+        String text = generateTrace(mappings, lineCount);
+        System.out.printf("Translating %d lines (%.2f MB) %d times%n", lineCount, text.length() * 2 / 1e6, ROUNDS);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            CountingWriter out = new CountingWriter();
+            Reader in = new StringReader(text);
+            start = System.nanoTime();
+            translator.translate(in, out);
+            long time = System.nanoTime() - start;
+            System.out.printf("round %2d: %8.2f ms, %10.0f lines/s, %8.2f MB/s%n", round, time / 1e6,
+                    lineCount / (time / 1e9), out.count * 2 / 1e6 / (time / 1e9));
+        }
+    }
+
+    /**
+     * Build stack traces out of random obfuscated methods, the shape of a crash report.
+     */
+    private static String generateTrace(MappingSet mappings, int lineCount) {
+        List<String> frames = new ArrayList<>();
+        for (TopLevelClassMapping classMapping : mappings.getTopLevelClassMappings()) {
+            collectFrames(classMapping, frames);
+        }
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; line < lineCount; line++) {
+            if (line % FRAMES_PER_TRACE == 0) {
+                text.append("java.lang.IllegalStateException: Something went wrong\n");
+            } else {
+                text.append("\tat ").append(frames.get(random.nextInt(frames.size())))
+                        .append("(SourceFile:").append(random.nextInt(2000)).append(")\n");
+            }
+        }
+        return text.toString();
+    }
+
+    private static void collectFrames(ClassMapping<?, ?> classMapping, List<String> frames) {
+        String owner = classMapping.getFullObfuscatedName().replace('/', '.');
+        for (MethodMapping methodMapping : classMapping.getMethodMappings()) {
+            frames.add(owner + "." + methodMapping.getObfuscatedName());
+        }
+        for (InnerClassMapping innerClassMapping : classMapping.getInnerClassMappings()) {
+            collectFrames(innerClassMapping, frames);
+        }
+    }
+
+    /**
+     * Discards output, so only the translation is measured.
+     */
+    private static class CountingWriter extends Writer {
+        private long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str) {
+            count += str.length();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package io.jadon.mappings.yarn;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.io.MappingsReader;
+import org.cadixdev.lorenz.model.ClassMapping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads Tiny v1 & v2 mappings line by line straight into a {@link MappingSet}, without building an intermediate tree.
+ * Descriptors in Tiny files are written in the first namespace, so that has to be the namespace being mapped from.
+ */
+public class TinyStreamReader extends MappingsReader {
+
+    private final BufferedReader reader;
+    private final String from;
+    private final String to;
+
+    /**
+     * @param reader reader of the tiny file
+     * @param from   namespace of the obfuscated names, must be the file's first namespace
+     * @param to     namespace of the deobfuscated names
+     */
+    public TinyStreamReader(Reader reader, String from, String to) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public MappingSet read(MappingSet mappings) throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IOException("Empty tiny file");
+        }
+        List<String> headerParts = split(header);
+        if (headerParts.get(0).equals("v1")) {
+            readV1(mappings, namespaceIndex(headerParts.subList(1, headerParts.size())));
+        } else if (headerParts.size() >= 3 && headerParts.get(0).equals("tiny") && headerParts.get(1).equals("2")) {
+            readV2(mappings, namespaceIndex(headerParts.subList(3, headerParts.size())));
+        } else {
+            throw new IOException("Unknown tiny header: " + header);
+        }
+        return mappings;
+    }
+
+    /**
+     * v1 lines are flat, every member line names its owner:
+     * {@code CLASS a class_1}, {@code FIELD a Lb; a field_1}, {@code METHOD a ()V a method_1}
+     */
+    private void readV1(MappingSet mappings, int toIndex) throws IOException {
+        // the header is line 1
+        int lineNumber = 1;
+        for (String line; (line = reader.readLine()) != null; ) {
+            lineNumber++;
+            List<String> parts = split(line);
+            switch (parts.get(0)) {
+                case "CLASS": {
+                    requireColumns(parts, 2, lineNumber);
+                    String deobfuscatedName = name(parts, 1 + toIndex);
+                    ClassMapping<?, ?> classMapping = mappings.getOrCreateClassMapping(parts.get(1));
+                    if (deobfuscatedName != null) {
+                        classMapping.setDeobfuscatedName(deobfuscatedName);
+                    }
+                    break;
+                }
+                case "FIELD": {
+                    requireColumns(parts, 4, lineNumber);
+                    String deobfuscatedName = name(parts, 3 + toIndex);
+                    if (deobfuscatedName != null) {
+                        mappings.getOrCreateClassMapping(parts.get(1))
+                                .getOrCreateFieldMapping(parts.get(3), parts.get(2))
+                                .setDeobfuscatedName(deobfuscatedName);
+                    }
+                    break;
+                }
+                case "METHOD": {
+                    requireColumns(parts, 4, lineNumber);
+                    String deobfuscatedName = name(parts, 3 + toIndex);
+                    if (deobfuscatedName != null) {
+                        mappings.getOrCreateClassMapping(parts.get(1))
+                                .getOrCreateMethodMapping(parts.get(3), parts.get(2))
+                                .setDeobfuscatedName(deobfuscatedName);
+                    }
+                    break;
+                }
+                default:
+                    // comments & other sections
+                    break;
+            }
+        }
+    }
+
+    /**
+     * v2 nests members under their class with tab indentation:
+     * {@code c a class_1}, then {@code \tf Lb; a field_1} & {@code \tm ()V a method_1}.
+     * Parameters, locals & comments are skipped.
+     */
+    private void readV2(MappingSet mappings, int toIndex) throws IOException {
+        boolean escapedNames = false;
+        boolean inHeader = true;
+        ClassMapping<?, ?> classMapping = null;
+        int lineNumber = 1;
+        for (String line; (line = reader.readLine()) != null; ) {
+            lineNumber++;
+            int depth = 0;
+            while (depth < line.length() && line.charAt(depth) == '\t') {
+                depth++;
+            }
+            List<String> parts = split(line.substring(depth));
+
+            // properties directly follow the header
+            if (inHeader && depth == 1) {
+                if (parts.get(0).equals("escaped-names")) {
+                    escapedNames = true;
+                }
+                continue;
+            }
+            inHeader = false;
+
+            if (escapedNames) {
+                for (int i = 1; i < parts.size(); i++) {
+                    parts.set(i, unescape(parts.get(i)));
+                }
+            }
+
+            if (depth == 0) {
+                classMapping = null;
+                if (parts.get(0).equals("c")) {
+                    requireColumns(parts, 2, lineNumber);
+                    classMapping = mappings.getOrCreateClassMapping(parts.get(1));
+                    String deobfuscatedName = name(parts, 1 + toIndex);
+                    if (deobfuscatedName != null) {
+                        classMapping.setDeobfuscatedName(deobfuscatedName);
+                    }
+                }
+            } else if (depth == 1 && classMapping != null) {
+                if (parts.get(0).equals("f") || parts.get(0).equals("m")) {
+                    requireColumns(parts, 3, lineNumber);
+                }
+                String deobfuscatedName = name(parts, 2 + toIndex);
+                if (deobfuscatedName == null) continue;
+                if (parts.get(0).equals("f")) {
+                    classMapping.getOrCreateFieldMapping(parts.get(2), parts.get(1)).setDeobfuscatedName(deobfuscatedName);
+                } else if (parts.get(0).equals("m")) {
+                    classMapping.getOrCreateMethodMapping(parts.get(2), parts.get(1)).setDeobfuscatedName(deobfuscatedName);
+                }
+            }
+        }
+    }
+
+    private int namespaceIndex(List<String> namespaces) throws IOException {
+        if (namespaces.isEmpty() || !namespaces.get(0).equals(from)) {
+            throw new IOException("Can only map from the first namespace of " + namespaces + ", not " + from);
+        }
+        int toIndex = namespaces.indexOf(to);
+        if (toIndex == -1) {
+            throw new IOException("Missing namespace " + to + " in " + namespaces);
+        }
+        return toIndex;
+    }
+
+    private static void requireColumns(List<String> parts, int columns, int lineNumber) throws IOException {
+        if (parts.size() < columns) {
+            throw new IOException("Expected at least " + columns + " columns for " + parts.get(0) + " on line " + lineNumber
+                    + ", got " + parts.size());
+        }
+    }
+
+    /**
+     * Get a name column, tiny leaves missing names empty.
+     */
+    private static String name(List<String> parts, int index) {
+        if (index >= parts.size() || parts.get(index).isEmpty()) return null;
+        return parts.get(index);
+    }
+
+    private static List<String> split(String line) {
+        List<String> parts = new ArrayList<>(8);
+        int start = 0;
+        for (int end; (end = line.indexOf('\t', start)) != -1; start = end + 1) {
+            parts.add(line.substring(start, end));
+        }
+        parts.add(line.substring(start));
+        return parts;
+    }
+
+    private static String unescape(String name) {
+        int backslash = name.indexOf('\\');
+        if (backslash == -1) return name;
+        StringBuilder builder = new StringBuilder(name.length());
+        builder.append(name, 0, backslash);
+        for (int i = backslash; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\\' && i + 1 < name.length()) {
+                char escaped = name.charAt(++i);
+                switch (escaped) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case '0':
+                        c = '\0';
+                        break;
+                    default:
+                        c = escaped;
+                        break;
+                }
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -1,23 +1,24 @@
 package io.jadon.mappings.yarn;
 
 import com.google.gson.JsonParser;
-import io.jadon.mappings.ByteUtil;
 import io.jadon.mappings.GameVersion;
+import io.jadon.mappings.ZipIndex;
 import lombok.SneakyThrows;
-import net.fabricmc.lorenztiny.TinyMappingFormat;
 import org.cadixdev.lorenz.MappingSet;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.Enumeration;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 public class YarnMappings {
 
@@ -31,37 +32,94 @@ public class YarnMappings {
         return JsonParser.parseReader(reader).getAsJsonArray().get(0).getAsJsonObject().get("version").getAsString();
     }
 
-    @SneakyThrows
     public static MappingSet getIntermediaryMappings(GameVersion gameVersion) {
-        File cache = gameVersion.getVersionDir();
+        return getIntermediaryMappings(gameVersion, false);
+    }
+
+    /**
+     * Read the official -> intermediary mappings of a version, downloading the intermediary jar if needed.
+     *
+     * @param gameVersion version to get mappings for
+     * @param cacheTiny   extract the tiny file next to the jar, otherwise it's parsed straight from the jar
+     * @return intermediary mappings
+     */
+    public static MappingSet getIntermediaryMappings(GameVersion gameVersion, boolean cacheTiny) {
+        return getIntermediaryMappings(gameVersion.getName(), gameVersion.getVersionDir(), cacheTiny);
+    }
+
+    /**
+     * Read the official -> intermediary mappings of a version, downloading the intermediary jar if needed.
+     *
+     * @param version   Minecraft version
+     * @param cache     directory to keep the intermediary jar in
+     * @param cacheTiny extract the tiny file next to the jar, otherwise it's parsed straight from the jar
+     * @return intermediary mappings
+     */
+    @SneakyThrows
+    public static MappingSet getIntermediaryMappings(String version, File cache, boolean cacheTiny) {
         cache.mkdirs();
-        File jarFile = new File(cache, "/intermediary-" + gameVersion.getName() + ".jar");
+        File tinyFile = new File(cache, "/intermediary-" + version + ".tiny");
+        // an extracted tiny file is all we need, the jar doesn't have to be there
+        if (tinyFile.exists()) {
+            return readTiny(Files.newBufferedReader(tinyFile.toPath(), StandardCharsets.UTF_8));
+        }
 
-        if (!jarFile.exists()) {
-            URL url = new URL(MAPPINGS_URL.replaceAll("%s", gameVersion.getName()));
-            ReadableByteChannel readChannel = Channels.newChannel(url.openStream());
-            FileOutputStream output = new FileOutputStream(jarFile);
-            FileChannel writeChannel = output.getChannel();
-            writeChannel.transferFrom(readChannel, 0, Long.MAX_VALUE);
+        File jarFile = new File(cache, "/intermediary-" + version + ".jar");
+        // a partial download used to be cached forever, so check old jars too
+        if (!ZipIndex.isValid(jarFile.toPath())) {
+            downloadJar(new URL(MAPPINGS_URL.replaceAll("%s", version)), jarFile);
         }
 
-        File tinyFile = new File(cache, "/intermediary-" + gameVersion.getName() + ".tiny");
+        try (ZipIndex jar = ZipIndex.open(jarFile.toPath())) {
+            ZipIndex.Entry entry = jar.find(name -> name.contains("mappings.tiny"))
+                    .orElseThrow(() -> new IOException("No tiny mappings in " + jarFile));
+            if (!cacheTiny) {
+                return readTiny(new InputStreamReader(jar.openStream(entry), StandardCharsets.UTF_8));
+            }
+            // extract next to it first so a failed extraction doesn't leave a partial tiny file behind
+            File partFile = new File(tinyFile.getPath() + ".part");
+            jar.extract(entry, partFile.toPath());
+            Files.move(partFile.toPath(), tinyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return readTiny(Files.newBufferedReader(tinyFile.toPath(), StandardCharsets.UTF_8));
+    }
 
-        if (!tinyFile.exists()) {
-            JarFile jar = new JarFile(jarFile);
-            final Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                final JarEntry entry = entries.nextElement();
-                String entryName = entry.getName();
-                if (entry.getName().contains("mappings.tiny")) {
-                    byte[] bytes = ByteUtil.toByteArray(jar.getInputStream(entry));
-                    Files.write(tinyFile.toPath(), bytes);
-                    break;
-                }
+    private static MappingSet readTiny(Reader reader) throws IOException {
+        try (TinyStreamReader tinyReader = new TinyStreamReader(reader, "official", "intermediary")) {
+            return tinyReader.read();
+        }
+    }
+
+    /**
+     * Download a jar to a temporary file and only move it into place once its size matches the
+     * Content-Length and its central directory can be read.
+     *
+     * @param url     jar to download
+     * @param jarFile where to save the jar
+     */
+    private static void downloadJar(URL url, File jarFile) throws IOException {
+        File partFile = new File(jarFile.getPath() + ".part");
+        URLConnection connection = url.openConnection();
+        long expectedSize = connection.getContentLengthLong();
+        long size = 0;
+        try (ReadableByteChannel readChannel = Channels.newChannel(connection.getInputStream());
+             FileChannel writeChannel = FileChannel.open(partFile.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // transferFrom stops early if the source has nothing to give, keep going until it's drained
+            for (long transferred; (transferred = writeChannel.transferFrom(readChannel, size, Long.MAX_VALUE)) > 0; ) {
+                size += transferred;
             }
         }
 
-        return TinyMappingFormat.LEGACY.createReader(tinyFile.toPath(), "official", "intermediary").read();
+        if (expectedSize != -1 && size != expectedSize) {
+            Files.deleteIfExists(partFile.toPath());
+            throw new IOException("Downloaded " + size + " of " + expectedSize + " bytes from " + url);
+        }
+        if (!ZipIndex.isValid(partFile.toPath())) {
+            Files.deleteIfExists(partFile.toPath());
+            throw new IOException("Downloaded an incomplete jar from " + url);
+        }
+        Files.move(partFile.toPath(), jarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
 
 }